@@ -1,12 +1,25 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.Random;
 import java.util.Scanner;
 
 public class CatVsDogInput 
 {
-    public static void main(String[] args)
+    private static final String USAGE = "usage: CatVsDogInput [<inputFile> [workers] [retries] [workerHeap] [workerTimeoutSeconds]]";
+    
+    public static void main(String[] args) throws IOException, InterruptedException
     {        
-        runInCommandLineMode();
-//        runTestCase();
+        if (args.length > 0 && args[0].equals("--shard"))
+            runInShardWorkerMode(args);
+        else if (args.length > 0 && args[0].startsWith("--"))
+            throw new IllegalArgumentException("Invalid option: \'" + args[0] + "\' - " + USAGE);
+        else if (args.length > 0)
+            runInCoordinatorMode(args);
+        else
+            runInCommandLineMode();
+//        runTestCase(100000, 5000, 3);
     }
     
     // retrieve input as specified on labs.spotify.com/puzzles and run
@@ -18,6 +31,13 @@ public class CatVsDogInput
         // get number of voting rounds
         int episodes = s.nextInt();
 
+        solveEpisodes(s, episodes);
+    }
+    
+    // read the given number of episodes from the scanner, run puzzle solver
+    // on them and output results.
+    private static void solveEpisodes(Scanner s, int episodes)
+    {
         VotingRound[] rounds = new VotingRound[episodes];
         
         while (episodes > 0)
@@ -56,42 +76,116 @@ public class CatVsDogInput
         }
     }
     
-    // Method for testing puzzle solver
-    private static void runTestCase()
+    // solve a shard of an input file for ShardedBatchCoordinator: the given
+    // number of episodes, starting at the given byte offset of the file.
+    // usage: CatVsDogInput --shard <inputFile> <offset> <episodes>
+    private static void runInShardWorkerMode(String[] args) throws IOException
+    {
+        if (args.length != 4)
+        {
+            throw new IllegalArgumentException("Invalid shard arguments: expected 3 but got " + (args.length - 1)
+                    + " - usage: CatVsDogInput --shard <inputFile> <offset> <episodes>");
+        }
+        
+        long offset   = parseNumber(args[2], "offset");
+        int  episodes = (int) parseNumber(args[3], "episode count");
+        
+        FileInputStream in = new FileInputStream(args[1]);
+        try
+        {
+            in.getChannel().position(offset);
+            solveEpisodes(new Scanner(new BufferedInputStream(in)), episodes);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+    
+    // split the input file given on the command line across several worker
+    // JVMs and print their merged results, as if run in command line mode.
+    // usage: CatVsDogInput <inputFile> [workers] [retries] [workerHeap] [workerTimeoutSeconds]
+    private static void runInCoordinatorMode(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length > 5)
+        {
+            throw new IllegalArgumentException("Invalid arguments: expected at most 5 but got " + args.length
+                    + " - " + USAGE);
+        }
+        
+        File   inputFile  = new File(args[0]);
+        int    workers    = args.length > 1? (int) parseNumber(args[1], "worker count") : Runtime.getRuntime().availableProcessors();
+        int    retries    = args.length > 2? (int) parseNumber(args[2], "retry count") : 2;
+        String workerHeap = args.length > 3? args[3] : null;
+        long   timeout    = args.length > 4? parseNumber(args[4], "worker timeout") : 3600;
+        
+        ShardedBatchCoordinator coordinator = new ShardedBatchCoordinator(inputFile, workers, retries, workerHeap, timeout);
+        coordinator.run(System.out);
+    }
+    
+    // parse a non-negative whole number command line argument, throwing an
+    // exception naming the argument if it isn't one.
+    private static long parseNumber(String arg, String name)
+    {
+        try
+        {
+            long value = Long.parseLong(arg);
+            if (value >= 0)
+                return value;
+        }
+        catch (NumberFormatException e)
+        {
+            // fall through to the exception below
+        }
+        
+        throw new IllegalArgumentException("Invalid " + name + ": \'" + arg + "\' - must be a non-negative whole number");
+    }
+    
+    // Method for testing puzzle solver. Times the solver on random rounds
+    // with the given number of votes and animals per species, once with voter
+    // nodes in input order and once renumbered (see VoteResultFinder). Fewer
+    // animals means more conflicts, e.g. 8000 votes on 20 animals is about
+    // 1.5 million edges. Run by swapping the calls in main.
+    private static void runTestCase(int votes, int animals, int trials)
     {
         /* it's been such a */ long time /* I think I should be goin' */ = System.currentTimeMillis();
-        long compilationTime = 0;
-        long solveTime = 0;
+        long[] compilationTime = new long[2]; // [input order, renumbered]
+        long[] solveTime       = new long[2];
         
-    	for (int trials = 0; trials < 50; trials++)
+    	for (int trial = 0; trial < trials; trial++)
     	{
-	        int count = 100;
-	        Episode epp = new Episode(count, count);
+	        Episode epp = new Episode(animals, animals);
 	        
 	        VotingRound v = new VotingRound(epp);
 	        
 	        Random r = new Random();
 	        
-	        for (int i = 0; i < 500; i++)
+	        for (int i = 0; i < votes; i++)
 	        {
-	            v.addVote(r.nextInt(count), r.nextInt(count), r.nextBoolean()? VoteType.forCat : VoteType.forDog);
-	//            System.out.println(i + ": " + v.getVotes().get(i));
+	            v.addVote(r.nextInt(animals), r.nextInt(animals), r.nextBoolean()? VoteType.forCat : VoteType.forDog);
 	        }
 
-	    	long start = System.currentTimeMillis();
-	        VoteResultFinder vrf = new VoteResultFinder(v);
-	        long end = System.currentTimeMillis();
-	        compilationTime += end - start;
-	        
-
-	    	start = System.currentTimeMillis();
-	        vrf.determineMaxHappyVoterCount();
-	        end = System.currentTimeMillis();
-	        solveTime += end - start;
+	        // alternate which ordering runs first, so JIT warm-up doesn't favour one
+	        for (int k = 0; k < 2; k++)
+	        {
+	            int ordering = (trial + k) % 2;
+	            
+	            long start = System.currentTimeMillis();
+	            VoteResultFinder vrf = new VoteResultFinder(v, ordering == 1);
+	            long end = System.currentTimeMillis();
+	            compilationTime[ordering] += end - start;
+	            
+	            start = System.currentTimeMillis();
+	            vrf.determineMaxHappyVoterCount();
+	            end = System.currentTimeMillis();
+	            solveTime[ordering] += end - start;
+	        }
     	}
     	
         long elapsed = System.currentTimeMillis() - time;  
         
-        System.out.println("time: " + elapsed + " ms, compilationTime: " + compilationTime + ", solveTime: " + solveTime);
+        System.out.println("time: " + elapsed + " ms");
+        System.out.println("input order: compilationTime: " + compilationTime[0] + ", solveTime: " + solveTime[0]);
+        System.out.println("renumbered:  compilationTime: " + compilationTime[1] + ", solveTime: " + solveTime[1]);
     }
 }
@@ -1,27 +1,44 @@
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 /*
  * Adjacency List implementation of a directed graph. Nodes are represented
  * implicitly by consecutive integer values in the interval [0, nodeCount).
+ * 
+ * Adjacency lists are plain int arrays (grown as needed) rather than lists of
+ * boxed Integers, and the breadth-first search reuses its work arrays between
+ * calls, so repeated searches on a large graph don't allocate per node. As a
+ * consequence a graph must not be searched from several threads at once.
  */
 public class DirectedGraph
 {
-    private int                 nodeCount;
-    private List<List<Integer>> adjacencyList;
+    private int     nodeCount;
+    private int[][] adjacencyList;    // adjacent nodes of each node, valid up to adjacencyCount
+    private int[]   adjacencyCount;
+    
+    // Breadth-first search work arrays. A node counts as visited if its
+    // visitedMark equals the current searchId, so nothing needs clearing.
+    private int[]   visitedMark;
+    private int[]   parent;
+    private int[]   searchQueue;
+    private int     searchId;
     
     public DirectedGraph(int nodeCount, List<DirectedEdge> edges)
     {
-        this.nodeCount     = nodeCount;
-        this.adjacencyList = new ArrayList<List<Integer>>();
+        this.nodeCount      = nodeCount;
+        this.adjacencyList  = new int[nodeCount][];
+        this.adjacencyCount = new int[nodeCount];
+        this.visitedMark    = new int[nodeCount];
+        this.parent         = new int[nodeCount];
+        this.searchQueue    = new int[nodeCount];
+        this.searchId       = 0;
         
         // Initialize adjacency list
         for (int i = 0; i < nodeCount; i++)
         {
-            List<Integer> edgeList = new ArrayList<Integer>();            
-            this.adjacencyList.add(edgeList);
+            this.adjacencyList[i] = new int[4];
         }
 
         // Populate adjacency list
@@ -44,16 +61,13 @@ public class DirectedGraph
     
     public void printAdjacencyList()
     {
-        for (int i = 0; i < this.adjacencyList.size(); i++)
+        for (int i = 0; i < this.nodeCount; i++)
         {
             System.out.print(i + ": ");
             
-            List<Integer> adjacentNodes = this.adjacencyList.get(i);
-            
-            Iterator<Integer> iter = adjacentNodes.iterator();
-            while (iter.hasNext())
+            for (int j = 0; j < this.adjacencyCount[i]; j++)
             {
-                System.out.print(iter.next() + (iter.hasNext()? ", " : ""));
+                System.out.print(this.adjacencyList[i][j] + (j < this.adjacencyCount[i] - 1? ", " : ""));
             }
             
             System.out.println();
@@ -88,66 +102,47 @@ public class DirectedGraph
         
         // Begin breadth-first search
         
-        // array indicating whether a given node has been visited 
-        boolean[] visited = new boolean[nodeCount];
-        
-        // instantiate visited array
-        for (int i = 0; i < visited.length; i++)
+        // start a new search generation, clearing the marks only if the counter wraps around
+        this.searchId++;
+        if (this.searchId == Integer.MAX_VALUE)
         {
-            visited[i] = i == departure;
+            Arrays.fill(this.visitedMark, 0);
+            this.searchId = 1;
         }
 
-        boolean          shortestPathFound = false;
-        // Set of nodes at current level of BFS
-        List<Integer> currentlyVisitedNodes = new LinkedList<Integer>(); 
-        // Graph of reversed edges to derive the shortest path via backtracking once it is found.
-        DirectedGraph shortestPathTraceGraph = new DirectedGraph(nodeCount, new LinkedList<DirectedEdge>());
+        // parent[n] is the node n was first reached from, used to derive
+        // the shortest path via backtracking once it is found.
+        int     queueHead         = 0;
+        int     queueTail         = 0;
+        boolean shortestPathFound = departure == destination;
         
-        currentlyVisitedNodes.add(departure);
-        visited[departure] = true;    
+        this.searchQueue[queueTail++]  = departure;
+        this.visitedMark[departure]    = this.searchId;
         
-        // Iterate through BFS procedure
-        do 
+        while (queueHead < queueTail && !shortestPathFound)
         {
-            Iterator<Integer> currentlyVisitedNodesIter = currentlyVisitedNodes.iterator();
-            // Nodes for next level of BFS iteration
-            List<Integer>  nextVisitedNodes = new ArrayList<Integer>();
+            int   currentNode   = this.searchQueue[queueHead++];
+            int[] adjacentNodes = this.adjacencyList[currentNode];
             
-            // Add every unvisited node adjacent to the currently visited notes 
-            // to the list of nodes to visit next
-            while (currentlyVisitedNodesIter.hasNext() && !shortestPathFound)
-            {
-                int currentNode = currentlyVisitedNodesIter.next();
-                                
-                if (currentNode == destination)
-                {
-                    shortestPathFound = true;
-                }
-                else
+            // Add every unvisited node adjacent to the current node to the queue
+            for (int i = 0; i < this.adjacencyCount[currentNode]; i++)
+            {            
+                int adjacentNode = adjacentNodes[i];
+                
+                if (this.visitedMark[adjacentNode] != this.searchId)
                 {
-                    Iterator<Integer> adjacentNodes = this.adjacencyList.get(currentNode).iterator();
-                    while (adjacentNodes.hasNext())
-                    {            
-                        int adjacentNode = adjacentNodes.next();
-                        
-                        if (!visited[adjacentNode])
-                        {
-                            nextVisitedNodes.add(adjacentNode);
-                            shortestPathTraceGraph.addEdge(new DirectedEdge(adjacentNode, currentNode));    
-                            visited[adjacentNode] = true;                            
-                        }
-
-                        if (adjacentNode == destination)
-                        {
-                            shortestPathFound = true;
-                        }
-                    }                
+                    this.visitedMark[adjacentNode] = this.searchId;
+                    this.parent[adjacentNode]      = currentNode;
+                    this.searchQueue[queueTail++]  = adjacentNode;
+                    
+                    if (adjacentNode == destination)
+                    {
+                        shortestPathFound = true;
+                        break;
+                    }
                 }
             }
-            
-            currentlyVisitedNodes = nextVisitedNodes;
         }
-        while (!shortestPathFound && !currentlyVisitedNodes.isEmpty());        
                 
         // backtrack to derive the shortest path
         if (shortestPathFound)
@@ -159,8 +154,7 @@ public class DirectedGraph
             
             while (currentNode != departure)
             {
-                List<Integer> outgoingEdges = shortestPathTraceGraph.getAdjacentNodes(currentNode);    
-                currentNode = outgoingEdges.get(0);
+                currentNode = this.parent[currentNode];
                 shortestPath.push(currentNode);
             }
             
@@ -194,13 +188,42 @@ public class DirectedGraph
                     + "of nodes in the graph.");
         }
         
-        List<Integer> adjacentNodes = this.adjacencyList.get(start);
-        if (adjacentNodes.contains(end))
+        if (this.hasEdge(start, end))
         {
             throw new IllegalArgumentException("Duplicate edge: (" + start + ", " + end 
                     + ") - Graph cannot contain duplicate edges.");                
         }
-        this.adjacencyList.get(start).add(end);
+        
+        this.appendEdge(start, end);
+    }
+    
+    /*
+     *  Adds an edge to the graph without validating it. For callers that
+     *  already guarantee valid nodes and no duplicate edges.
+     */
+    void appendEdge(int start, int end)
+    {
+        int[] adjacentNodes = this.adjacencyList[start];
+        if (this.adjacencyCount[start] == adjacentNodes.length)
+        {
+            adjacentNodes = Arrays.copyOf(adjacentNodes, 2 * adjacentNodes.length);
+            this.adjacencyList[start] = adjacentNodes;
+        }
+        adjacentNodes[this.adjacencyCount[start]++] = end;
+    }
+    
+    /*
+     *  Returns true if the graph contains the given edge.
+     */
+    public boolean hasEdge(int start, int end)
+    {
+        int[] adjacentNodes = this.adjacencyList[start];
+        for (int i = 0; i < this.adjacencyCount[start]; i++)
+        {
+            if (adjacentNodes[i] == end)
+                return true;
+        }
+        return false;
     }
     
     /*
@@ -216,16 +239,31 @@ public class DirectedGraph
      */
     void removeEdge(int start, int end)
     {        
-    	if (this.adjacencyList.get(start).contains(end))
-    		this.adjacencyList.get(start).remove((Integer) end);
+        int[] adjacentNodes = this.adjacencyList[start];
+        for (int i = 0; i < this.adjacencyCount[start]; i++)
+        {
+            if (adjacentNodes[i] == end)
+            {
+                // shift the remaining nodes down to keep their order
+                System.arraycopy(adjacentNodes, i + 1, adjacentNodes, i, this.adjacencyCount[start] - i - 1);
+                this.adjacencyCount[start]--;
+                return;
+            }
+        }
     }
 
     /*
-     *  Returns list of nodes (integers) adjacent to the given node
+     *  Returns list of nodes (integers) adjacent to the given node. The list
+     *  is a copy; changing it does not change the graph.
      */
     public List<Integer> getAdjacentNodes(int node)
     {
-        return this.adjacencyList.get(node);
+        List<Integer> adjacentNodes = new ArrayList<Integer>(this.adjacencyCount[node]);
+        for (int i = 0; i < this.adjacencyCount[node]; i++)
+        {
+            adjacentNodes.add(this.adjacencyList[node][i]);
+        }
+        return adjacentNodes;
     }
     
 //    /*
@@ -0,0 +1,39 @@
+/*
+ *  A what-if constraint on a single contestant: the given cat or dog
+ *  is forced either to stay on the show or to be kicked off, regardless
+ *  of how the audience votes.
+ */
+public class ForcedAnimal
+{
+    private VoteType species;  // forCat if the contestant is a cat, forDog if a dog
+    private int      animal;
+    private boolean  mustStay;
+
+    public ForcedAnimal(VoteType species, int animal, boolean mustStay)
+    {
+        this.species  = species;
+        this.animal   = animal;
+        this.mustStay = mustStay;
+    }
+
+    public VoteType getSpecies()
+    {
+        return this.species;
+    }
+
+    public int getAnimal()
+    {
+        return this.animal;
+    }
+
+    public boolean mustStay()
+    {
+        return this.mustStay;
+    }
+
+    @Override
+    public String toString()
+    {
+        return (species == VoteType.forCat? "C" : "D") + (this.animal + 1) + (mustStay? " stays" : " goes");
+    }
+}
@@ -0,0 +1,357 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  Solves a large input file by splitting it across several local worker
+ *  JVMs, so that each one only needs a small heap:
+ *
+ *  - The input file is pre-scanned once at the byte level to find the offset
+ *    of every episode, without building any votes or graphs.
+ *  - Consecutive episodes are grouped into shards of roughly equal work. Since
+ *    VoteResultFinder compares every pair of votes, an episode is weighted by
+ *    the square of its voter count.
+ *  - One worker process per shard runs CatVsDogInput on the input file itself,
+ *    starting at the shard's first episode, so the file is never copied. A
+ *    shard whose worker fails, hangs past the timeout or prints the wrong
+ *    number of results is retried.
+ *  - Worker outputs are printed in shard order, which is the original episode order.
+ */
+public class ShardedBatchCoordinator
+{
+    private File   inputFile;
+    private int    workerCount;
+    private int    maxRetries;
+    private String workerHeap;      // -Xmx value for worker JVMs, e.g. "256m"
+    private long   workerTimeout;   // seconds a worker may run before it is killed
+
+    // Filled by the pre-scan: byte offset where each episode starts, and
+    // the number of voters in it.
+    private List<Long>    episodeStarts  = new ArrayList<Long>();
+    private List<Integer> episodeVoters  = new ArrayList<Integer>();
+
+    public ShardedBatchCoordinator(File inputFile, int workerCount, int maxRetries, String workerHeap, long workerTimeout)
+    {
+        if (workerCount < 1)
+            throw new IllegalArgumentException("Invalid worker count: " + workerCount + " - at least one worker is required");
+        if (maxRetries < 0)
+            throw new IllegalArgumentException("Invalid retry count: " + maxRetries + " - cannot be negative");
+        if (workerTimeout < 1)
+            throw new IllegalArgumentException("Invalid worker timeout: " + workerTimeout + " - must be at least one second");
+
+        this.inputFile     = inputFile;
+        this.workerCount   = workerCount;
+        this.maxRetries    = maxRetries;
+        this.workerHeap    = workerHeap;
+        this.workerTimeout = workerTimeout;
+    }
+
+    /*
+     *  Solves every episode in the input file and prints the results to
+     *  the given stream, one per line, in the original episode order.
+     */
+    public void run(PrintStream out) throws IOException, InterruptedException
+    {
+        this.scanEpisodes();
+
+        List<int[]>   shards      = this.splitIntoShards();
+        File          workDir     = createTempDir();
+        List<Process> liveWorkers = new ArrayList<Process>();
+
+        try
+        {
+            List<File> shardOutputs = new ArrayList<File>();
+            for (int i = 0; i < shards.size(); i++)
+                shardOutputs.add(new File(workDir, "shard" + i + ".out"));
+
+            // run every shard, then rerun only those that failed
+            List<Integer> pendingShards = new ArrayList<Integer>();
+            for (int i = 0; i < shards.size(); i++)
+                pendingShards.add(i);
+
+            for (int attempt = 0; !pendingShards.isEmpty(); attempt++)
+            {
+                if (attempt > this.maxRetries)
+                {
+                    throw new IllegalStateException("Shards " + pendingShards + " still failing after "
+                            + this.maxRetries + " retries");
+                }
+
+                for (int shard : pendingShards)
+                    liveWorkers.add(this.startWorker(shards.get(shard), shardOutputs.get(shard)));
+
+                // all workers of an attempt run side by side, so they share one deadline
+                long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(this.workerTimeout);
+
+                List<Integer> failedShards = new ArrayList<Integer>();
+                for (int i = 0; i < pendingShards.size(); i++)
+                {
+                    int     shard    = pendingShards.get(i);
+                    Process worker   = liveWorkers.get(i);
+                    int     expected = shards.get(shard)[1] - shards.get(shard)[0];
+                    String  failure  = null;
+
+                    if (!worker.waitFor(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+                    {
+                        worker.destroyForcibly().waitFor();
+                        failure = "timed out after " + this.workerTimeout + " s";
+                    }
+                    else if (worker.exitValue() != 0)
+                    {
+                        failure = "failed with exit code " + worker.exitValue();
+                    }
+                    else
+                    {
+                        int results = countLines(shardOutputs.get(shard));
+                        if (results != expected)
+                            failure = "printed " + results + " results, expected " + expected;
+                    }
+
+                    if (failure != null)
+                    {
+                        System.err.println("Shard " + shard + " " + failure + (attempt < this.maxRetries? ", retrying" : ""));
+                        failedShards.add(shard);
+                    }
+                }
+
+                liveWorkers.clear();
+                pendingShards = failedShards;
+            }
+
+            // merge outputs in episode order
+            for (File shardOutput : shardOutputs)
+            {
+                BufferedReader reader = new BufferedReader(new FileReader(shardOutput));
+                try
+                {
+                    String line;
+                    while ((line = reader.readLine()) != null)
+                        out.println(line);
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+        }
+        finally
+        {
+            // don't leave workers running if an attempt was cut short
+            for (Process worker : liveWorkers)
+                worker.destroy();
+
+            for (File f : workDir.listFiles())
+                f.delete();
+            workDir.delete();
+        }
+    }
+
+    /*
+     *  Reads through the input file token by token, recording the byte offset
+     *  of each episode. Only the episode header numbers are parsed; votes are
+     *  skipped over.
+     */
+    private void scanEpisodes() throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(this.inputFile), 1 << 16);
+
+        try
+        {
+            TokenScanner scanner = new TokenScanner(in);
+
+            int episodes = scanner.nextInt();
+
+            while (episodes > 0)
+            {
+                scanner.skipToToken();
+                long start = scanner.position();
+
+                scanner.nextInt();  // numCats
+                scanner.nextInt();  // numDogs
+                int numVoters = scanner.nextInt();
+
+                for (int i = 0; i < 2 * numVoters; i++)
+                    scanner.skipToken();
+
+                this.episodeStarts.add(start);
+                this.episodeVoters.add(numVoters);
+
+                episodes--;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /*
+     *  Groups consecutive episodes into at most workerCount shards of roughly
+     *  equal work. Each shard is returned as [firstEpisode, lastEpisode + 1).
+     */
+    private List<int[]> splitIntoShards()
+    {
+        int  episodeCount = this.episodeStarts.size();
+        long totalWeight  = 0;
+
+        for (int voters : this.episodeVoters)
+            totalWeight += episodeWeight(voters);
+
+        List<int[]> shards     = new ArrayList<int[]>();
+        int         shardStart = 0;
+        long        weight     = 0;
+
+        for (int i = 0; i < episodeCount; i++)
+        {
+            weight += episodeWeight(this.episodeVoters.get(i));
+
+            // compare as doubles, weight * workerCount can overflow a long
+            boolean isLastShard = shards.size() == this.workerCount - 1;
+            if (!isLastShard && (double) weight * this.workerCount >= (double) totalWeight * (shards.size() + 1))
+            {
+                shards.add(new int[] { shardStart, i + 1 });
+                shardStart = i + 1;
+            }
+        }
+
+        if (shardStart < episodeCount)
+            shards.add(new int[] { shardStart, episodeCount });
+
+        return shards;
+    }
+
+    /*
+     *  Estimated solve cost of an episode. Building the voter graph compares
+     *  every pair of votes, and every episode costs at least something, even
+     *  if it has no voters.
+     */
+    private static long episodeWeight(int voters)
+    {
+        return (long) voters * voters + 1;
+    }
+
+    /*
+     *  Launches a worker JVM that runs CatVsDogInput on the given episode range
+     *  of the input file, using the same java installation and classpath as
+     *  this process.
+     */
+    private Process startWorker(int[] shard, File shardOutput) throws IOException
+    {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+        List<String> command = new ArrayList<String>();
+        command.add(javaBin);
+        if (this.workerHeap != null)
+            command.add("-Xmx" + this.workerHeap);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("CatVsDogInput");
+        command.add("--shard");
+        command.add(this.inputFile.getPath());
+        command.add(String.valueOf(this.episodeStarts.get(shard[0])));
+        command.add(String.valueOf(shard[1] - shard[0]));
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(shardOutput);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        return builder.start();
+    }
+
+    private static int countLines(File f) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new FileReader(f));
+        try
+        {
+            int lines = 0;
+            while (reader.readLine() != null)
+                lines++;
+            return lines;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private static File createTempDir() throws IOException
+    {
+        File dir = File.createTempFile("catvsdog", "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("Could not create temporary directory " + dir);
+        return dir;
+    }
+
+    /*
+     *  Minimal whitespace-separated token reader over a byte stream that keeps
+     *  track of its byte offset in the stream.
+     */
+    private static class TokenScanner
+    {
+        private InputStream in;
+        private long        position;  // offset of the next unread byte
+        private int         next;      // next unread byte, or -1 at end of stream
+
+        TokenScanner(InputStream in) throws IOException
+        {
+            this.in       = in;
+            this.next     = in.read();
+            this.position = 0;
+        }
+
+        long position()
+        {
+            return this.position;
+        }
+
+        /*
+         *  Skips whitespace up to the start of the next token. Throws exception
+         *  if there is none.
+         */
+        void skipToToken() throws IOException
+        {
+            while (this.next != -1 && Character.isWhitespace(this.next))
+                this.advance();
+
+            if (this.next == -1)
+                throw new IOException("Unexpected end of input at byte " + this.position);
+        }
+
+        void skipToken() throws IOException
+        {
+            this.skipToToken();
+            while (this.next != -1 && !Character.isWhitespace(this.next))
+                this.advance();
+        }
+
+        int nextInt() throws IOException
+        {
+            this.skipToToken();
+
+            long tokenStart = this.position;
+            int  value      = 0;
+            while (this.next != -1 && !Character.isWhitespace(this.next))
+            {
+                if (this.next < '0' || this.next > '9')
+                    throw new IOException("Expected a number at byte " + tokenStart);
+                value = value * 10 + (this.next - '0');
+                this.advance();
+            }
+            return value;
+        }
+
+        private void advance() throws IOException
+        {
+            this.next = this.in.read();
+            this.position++;
+        }
+    }
+}
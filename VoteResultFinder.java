@@ -1,3 +1,5 @@
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -26,6 +28,9 @@ import java.util.List;
  *    is used to find the number of edges in a maximum matching for this graph, and
  *    return (<number of nodes in graph> - <number of edges in maximum matching>)
  *    as the result.
+ *  - Voter nodes are numbered in breadth-first order of the voter graph rather
+ *    than input order (see constructor). voteOfNode maps node IDs back to
+ *    vote indices.
  */
 
 public class VoteResultFinder 
@@ -34,8 +39,23 @@ public class VoteResultFinder
     int           sourceNode;  // Nodes added to voter graph for 
     int           sinkNode;    // maximum matching algorithm.
     VotingRound   votingRound; 
+    int           maxHappyVoterCount = -1; // cached once the matching has been found
+    int[]         voteOfNode;  // vote index of each voter node
     
     public VoteResultFinder(VotingRound votingRound)
+    {
+        this(votingRound, true);
+    }
+    
+    /*
+     *  If renumberVoters is set, voter nodes are numbered in breadth-first
+     *  order of the (undirected) voter graph instead of input order, so each
+     *  voter's neighbours - both the voters kicking what it keeps and those
+     *  keeping what it kicks - get node IDs close to its own and to each other.
+     *  The searches of the matching algorithm then touch nearby adjacency lists
+     *  and work array entries rather than jumping across the whole graph.
+     */
+    public VoteResultFinder(VotingRound votingRound, boolean renumberVoters)
     {    	
         List<Vote> votes     = votingRound.getVotes();
         int        voteCount = votes.size();
@@ -45,24 +65,64 @@ public class VoteResultFinder
         this.sinkNode    = this.voterGraph.nodeCount() - 2;
         this.votingRound = votingRound;
         
-        // Populate voter adjacency graph
-        for (int i = 0; i < voteCount; i++)
+        int[][] adjacentVotes = findConflictingVotes(votingRound);
+        
+        // Number voter nodes
+        int[] nodeOfVote = new int[voteCount];
+        this.voteOfNode  = new int[voteCount];
+        
+        if (renumberVoters)
+        {
+            // breadth-first search over every connected component, starting
+            // each one at its first voter in input order
+            boolean[] numbered = new boolean[voteCount];
+            int       nextNode = 0;
+            
+            for (int i = 0; i < voteCount; i++)
+            {
+                if (numbered[i])
+                    continue;
+                
+                int queueHead = nextNode;
+                numbered[i]                 = true;
+                this.voteOfNode[nextNode++] = i;
+                
+                while (queueHead < nextNode)
+                {
+                    int currentVote = this.voteOfNode[queueHead++];
+                    for (int adjacentVote : adjacentVotes[currentVote])
+                    {
+                        if (!numbered[adjacentVote])
+                        {
+                            numbered[adjacentVote]      = true;
+                            this.voteOfNode[nextNode++] = adjacentVote;
+                        }
+                    }
+                }
+            }
+        }
+        else
+        {
+            for (int i = 0; i < voteCount; i++)
+            {
+                this.voteOfNode[i] = i;
+            }
+        }
+        
+        for (int node = 0; node < voteCount; node++)
         {
-            Vote v1 = votes.get(i);
-            for (int j = 0; j < voteCount; j++)
+            nodeOfVote[this.voteOfNode[node]] = node;
+        }
+        
+        // Populate voter adjacency graph, with edges directed from cat voters to dog voters
+        for (int node = 0; node < voteCount; node++)
+        {
+            int vote = this.voteOfNode[node];
+            if (votes.get(vote).getVoteType() == VoteType.forCat)
             {
-                Vote v2 = votes.get(j);
-                if (v1.getVoteType() != v2.getVoteType() && v1.getVoteToKick() == v2.getVoteToKeep() && i != j)
+                for (int adjacentVote : adjacentVotes[vote])
                 {
-                    DirectedEdge newEdge;
-                    if (v1.getVoteType() == VoteType.forCat)
-                        newEdge = new DirectedEdge(i, j); 
-                    else // v1.getVoteType() == VoteType.forDog)
-                        newEdge = new DirectedEdge(j, i);    
-                    
-                    // conditional addresses the case where two voters have opposing votes
-                    if (!this.voterGraph.getAdjacentNodes(newEdge.getStart()).contains(newEdge.getEnd()))
-                        this.voterGraph.addEdge(newEdge);
+                    this.voterGraph.appendEdge(node, nodeOfVote[adjacentVote]);
                 }
             }
         }
@@ -70,19 +130,99 @@ public class VoteResultFinder
         // connect source and sink nodes for maximum matching alorithm
         for (int i = 0; i < voteCount; i++)
         {
-            if (votes.get(i).getVoteType() == VoteType.forCat)
+            if (votes.get(this.voteOfNode[i]).getVoteType() == VoteType.forCat)
                 this.voterGraph.addEdge(new DirectedEdge(sourceNode, i));
-            else // votes.get(i).getVoteType() == VoteType.forDog)
+            else // votes.get(this.voteOfNode[i]).getVoteType() == VoteType.forDog)
                 this.voterGraph.addEdge(new DirectedEdge(i, sinkNode));
         }        
     }
     
+    /*
+     *  Returns, for each vote index, the indices of the votes it conflicts with,
+     *  i.e. the votes of the other type that keep what it kicks or kick what it
+     *  keeps. Votes are grouped by the animals they name first, so only actually
+     *  conflicting pairs are looked at. Each pair appears once per list, even if
+     *  two voters have exactly opposing votes.
+     */
+    private static int[][] findConflictingVotes(VotingRound votingRound)
+    {
+        List<Vote> votes     = votingRound.getVotes();
+        int        voteCount = votes.size();
+        
+        // dog voters by the cat they kick, and by the dog they keep
+        List<List<Integer>> dogVotersKickingCat = new ArrayList<List<Integer>>();
+        List<List<Integer>> dogVotersKeepingDog = new ArrayList<List<Integer>>();
+        for (int i = 0; i < votingRound.getNumCats(); i++)
+            dogVotersKickingCat.add(new ArrayList<Integer>());
+        for (int i = 0; i < votingRound.getNumDogs(); i++)
+            dogVotersKeepingDog.add(new ArrayList<Integer>());
+        
+        for (int i = 0; i < voteCount; i++)
+        {
+            Vote v = votes.get(i);
+            if (v.getVoteType() == VoteType.forDog)
+            {
+                dogVotersKickingCat.get(v.getCatChoice()).add(i);
+                dogVotersKeepingDog.get(v.getDogChoice()).add(i);
+            }
+        }
+        
+        // collect the dog voters conflicting with each cat voter, and mirror
+        // them onto the dog voters' lists
+        List<List<Integer>> conflicts = new ArrayList<List<Integer>>();
+        for (int i = 0; i < voteCount; i++)
+            conflicts.add(new ArrayList<Integer>());
+        
+        int[] lastSeenBy = new int[voteCount];
+        Arrays.fill(lastSeenBy, -1);
+        
+        for (int i = 0; i < voteCount; i++)
+        {
+            Vote v = votes.get(i);
+            if (v.getVoteType() != VoteType.forCat)
+                continue;
+            
+            for (int pass = 0; pass < 2; pass++)
+            {
+                List<Integer> candidates = pass == 0? dogVotersKickingCat.get(v.getCatChoice())
+                                                    : dogVotersKeepingDog.get(v.getDogChoice());
+                for (int j : candidates)
+                {
+                    // skip dog voters already found in the other group
+                    if (lastSeenBy[j] != i)
+                    {
+                        lastSeenBy[j] = i;
+                        conflicts.get(i).add(j);
+                        conflicts.get(j).add(i);
+                    }
+                }
+            }
+        }
+        
+        int[][] conflictArrays = new int[voteCount][];
+        for (int i = 0; i < voteCount; i++)
+        {
+            List<Integer> list = conflicts.get(i);
+            conflictArrays[i] = new int[list.size()];
+            for (int j = 0; j < conflictArrays[i].length; j++)
+            {
+                conflictArrays[i][j] = list.get(j);
+            }
+        }
+        return conflictArrays;
+    }
+    
     /*
      *  Solves the maximum voter satisfaction problem for the given voter set
-     *  using the process described at the top of this file.
+     *  using the process described at the top of this file. The voter graph
+     *  is left in its final (residual) state, so repeated calls return the
+     *  cached result instead of solving again.
      */
     public int determineMaxHappyVoterCount()
     {            
+        if (this.maxHappyVoterCount >= 0)
+            return this.maxHappyVoterCount;
+        
         List<Integer>    shortestPath;
         // Nodes connected to edges in the current matching. Will ultimately be the set of
         // nodes connected to edges in the maximum matching (Note that the actual edges
@@ -124,7 +264,8 @@ public class VoteResultFinder
         // nodes that appear in the edges of the matching, so return the following
         // value, explained in the comments at the top of the file to be equal to
         // the maximum number of satisfiable voters.
-        return this.votingRound.getVotes().size() - maximumMatchingNodes.size() / 2;
+        this.maxHappyVoterCount = this.votingRound.getVotes().size() - maximumMatchingNodes.size() / 2;
+        return this.maxHappyVoterCount;
     }
     
 //    /*
@@ -0,0 +1,339 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ *  Answers "what is the maximum number of happy voters if animal X must
+ *  stay / must go" without solving the round again from scratch.
+ *
+ *  - The final residual graph of a solved VoteResultFinder encodes a maximum
+ *    matching: every edge running from a dog voter back to a cat voter is a
+ *    matched edge, every other voter-to-voter edge is an unmatched one. This
+ *    is copied once into an immutable snapshot (undirected adjacency arrays
+ *    plus a mate array) that all queries share.
+ *  - Forcing an animal to stay makes every voter who wants it kicked unhappy,
+ *    and forcing it to go does the same for every voter who wants it kept.
+ *    Those voters are simply removed from the graph; the remaining voters can
+ *    be satisfied together exactly as before.
+ *  - Removing a voter that is unmatched leaves the matching maximum. Removing
+ *    a matched voter frees its partner, and the matching is maximum again
+ *    after at most one augmenting path search starting from that partner:
+ *    any other augmenting path would already have augmented the original
+ *    maximum matching. Voters are removed one at a time, so each query only
+ *    touches the neighbourhood of the removed voters.
+ *  - Changes to the matching made by a query are kept in a per-query overlay,
+ *    so queries can run in parallel against the same snapshot.
+ */
+public class WhatIfQuerySolver
+{
+    private final int     voteCount;
+    private final int     numCats;
+    private final int     numDogs;
+    private final int[][] adjacentVoters;  // undirected voter graph, by vote index
+    private final int[]   mate;            // matched partner of each voter, or -1
+    private final int     matchingSize;
+    private final int[][] catKeepers;      // voters who want cat i kept
+    private final int[][] catKickers;      // voters who want cat i kicked
+    private final int[][] dogKeepers;      // voters who want dog i kept
+    private final int[][] dogKickers;      // voters who want dog i kicked
+
+    public WhatIfQuerySolver(VoteResultFinder resultFinder)
+    {
+        // make sure the voter graph holds the final residual graph
+        resultFinder.determineMaxHappyVoterCount();
+
+        VotingRound   votingRound = resultFinder.votingRound;
+        DirectedGraph voterGraph  = resultFinder.voterGraph;
+        List<Vote>    votes       = votingRound.getVotes();
+
+        this.voteCount = votes.size();
+        this.numCats   = votingRound.getNumCats();
+        this.numDogs   = votingRound.getNumDogs();
+        this.mate      = new int[voteCount];
+
+        List<List<Integer>> adjacencyLists = new ArrayList<List<Integer>>();
+        for (int i = 0; i < voteCount; i++)
+        {
+            adjacencyLists.add(new ArrayList<Integer>());
+            this.mate[i] = -1;
+        }
+
+        // recover the undirected voter graph and the matching from the residual graph
+        int matchedEdges = 0;
+        for (int node = 0; node < voteCount; node++)
+        {
+            for (int adjacentNode : voterGraph.getAdjacentNodes(node))
+            {
+                // skip edges to the sink node
+                if (adjacentNode >= voteCount)
+                    continue;
+
+                // translate voter graph nodes back to vote indices
+                int i            = resultFinder.voteOfNode[node];
+                int adjacentVote = resultFinder.voteOfNode[adjacentNode];
+
+                adjacencyLists.get(i).add(adjacentVote);
+                adjacencyLists.get(adjacentVote).add(i);
+
+                // dog voter -> cat voter edges are reversed, i.e. matched, edges
+                if (votes.get(i).getVoteType() == VoteType.forDog)
+                {
+                    this.mate[i]            = adjacentVote;
+                    this.mate[adjacentVote] = i;
+                    matchedEdges++;
+                }
+            }
+        }
+        this.matchingSize   = matchedEdges;
+        this.adjacentVoters = toArrays(adjacencyLists);
+
+        // index voters by the animals they vote on, so removals stay local
+        List<List<Integer>> catKeeperLists = newLists(numCats);
+        List<List<Integer>> catKickerLists = newLists(numCats);
+        List<List<Integer>> dogKeeperLists = newLists(numDogs);
+        List<List<Integer>> dogKickerLists = newLists(numDogs);
+        for (int i = 0; i < voteCount; i++)
+        {
+            Vote v = votes.get(i);
+            if (v.getVoteType() == VoteType.forCat)
+            {
+                catKeeperLists.get(v.getCatChoice()).add(i);
+                dogKickerLists.get(v.getDogChoice()).add(i);
+            }
+            else // v.getVoteType() == VoteType.forDog
+            {
+                dogKeeperLists.get(v.getDogChoice()).add(i);
+                catKickerLists.get(v.getCatChoice()).add(i);
+            }
+        }
+        this.catKeepers = toArrays(catKeeperLists);
+        this.catKickers = toArrays(catKickerLists);
+        this.dogKeepers = toArrays(dogKeeperLists);
+        this.dogKickers = toArrays(dogKickerLists);
+    }
+
+    /*
+     *  Maximum number of happy voters without any forced animal. Equal to the
+     *  result of the VoteResultFinder the snapshot was taken from.
+     */
+    public int maxHappyVoterCount()
+    {
+        return this.voteCount - this.matchingSize;
+    }
+
+    /*
+     *  Returns the maximum number of happy voters if the given animal is
+     *  forced to stay or go.
+     */
+    public int maxHappyVoterCount(ForcedAnimal forcedAnimal)
+    {
+        int[] unhappyVoters = this.votersAgainst(forcedAnimal);
+
+        // per-query view of the matching; the shared mate array is never written
+        Map<Integer, Integer> mateChanges = new HashMap<Integer, Integer>();
+        Set<Integer>          removed     = new HashSet<Integer>();
+        int                   matching    = this.matchingSize;
+
+        for (int voter : unhappyVoters)
+        {
+            removed.add(voter);
+
+            int partner = this.mateOf(voter, mateChanges);
+            if (partner != -1)
+            {
+                mateChanges.put(voter, -1);
+                mateChanges.put(partner, -1);
+                matching--;
+
+                if (this.augmentFrom(partner, removed, mateChanges))
+                    matching++;
+            }
+        }
+
+        return (this.voteCount - removed.size()) - matching;
+    }
+
+    /*
+     *  Answers a batch of what-if queries in parallel. Results are returned
+     *  in the same order as the given constraints.
+     */
+    public int[] maxHappyVoterCounts(List<ForcedAnimal> forcedAnimals)
+    {
+        int             threads  = Math.max(1, Math.min(forcedAnimals.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try
+        {
+            List<Callable<Integer>> queries = new ArrayList<Callable<Integer>>();
+            for (final ForcedAnimal forcedAnimal : forcedAnimals)
+            {
+                queries.add(new Callable<Integer>()
+                {
+                    public Integer call()
+                    {
+                        return maxHappyVoterCount(forcedAnimal);
+                    }
+                });
+            }
+
+            List<Future<Integer>> futures = executor.invokeAll(queries);
+            int[]                 results = new int[futures.size()];
+            for (int i = 0; i < results.length; i++)
+            {
+                results[i] = futures.get(i).get();
+            }
+
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while answering what-if queries", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("What-if query failed", e.getCause());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     *  Returns the "must stay" and "must go" constraint for every contestant
+     *  in the round, cats first.
+     */
+    public List<ForcedAnimal> allForcedAnimals()
+    {
+        List<ForcedAnimal> forcedAnimals = new ArrayList<ForcedAnimal>();
+
+        for (int i = 0; i < this.numCats; i++)
+        {
+            forcedAnimals.add(new ForcedAnimal(VoteType.forCat, i, true));
+            forcedAnimals.add(new ForcedAnimal(VoteType.forCat, i, false));
+        }
+        for (int i = 0; i < this.numDogs; i++)
+        {
+            forcedAnimals.add(new ForcedAnimal(VoteType.forDog, i, true));
+            forcedAnimals.add(new ForcedAnimal(VoteType.forDog, i, false));
+        }
+
+        return forcedAnimals;
+    }
+
+    /*
+     *  Returns the voters who cannot be happy under the given constraint.
+     *  Throws exception if the animal does not exist in the round.
+     */
+    private int[] votersAgainst(ForcedAnimal forcedAnimal)
+    {
+        int     animal = forcedAnimal.getAnimal();
+        boolean isCat  = forcedAnimal.getSpecies() == VoteType.forCat;
+
+        if (animal < 0 || animal >= (isCat? this.numCats : this.numDogs))
+        {
+            throw new IllegalArgumentException("Invalid constraint: " + forcedAnimal + " - "
+                    + (isCat? "cat \'C" : "dog \'D") + (animal + 1) + "\' does not exist");
+        }
+
+        if (forcedAnimal.mustStay())
+            return isCat? this.catKickers[animal] : this.dogKickers[animal];
+        else
+            return isCat? this.catKeepers[animal] : this.dogKeepers[animal];
+    }
+
+    /*
+     *  Breadth-first search for an augmenting path starting at the unmatched
+     *  voter 'start', skipping removed voters. If one is found, the matching
+     *  overlay is flipped along it and true is returned.
+     */
+    private boolean augmentFrom(int start, Set<Integer> removed, Map<Integer, Integer> mateChanges)
+    {
+        // maps each voter reached through an unmatched edge to the voter it was reached from
+        Map<Integer, Integer> reachedFrom = new HashMap<Integer, Integer>();
+        LinkedList<Integer>   queue       = new LinkedList<Integer>();
+        Set<Integer>          visited     = new HashSet<Integer>();
+
+        queue.add(start);
+        visited.add(start);
+
+        while (!queue.isEmpty())
+        {
+            int currentVoter = queue.poll();
+
+            for (int adjacentVoter : this.adjacentVoters[currentVoter])
+            {
+                if (removed.contains(adjacentVoter) || visited.contains(adjacentVoter))
+                    continue;
+
+                visited.add(adjacentVoter);
+                reachedFrom.put(adjacentVoter, currentVoter);
+
+                int adjacentMate = this.mateOf(adjacentVoter, mateChanges);
+                if (adjacentMate == -1)
+                {
+                    // augmenting path found - flip matched and unmatched edges along it
+                    int voter = adjacentVoter;
+                    while (voter != -1)
+                    {
+                        int previous     = reachedFrom.get(voter);
+                        int previousMate = this.mateOf(previous, mateChanges);
+                        mateChanges.put(voter, previous);
+                        mateChanges.put(previous, voter);
+                        voter = previous == start? -1 : previousMate;
+                    }
+                    return true;
+                }
+
+                // continue along the matched edge
+                visited.add(adjacentMate);
+                queue.add(adjacentMate);
+            }
+        }
+
+        return false;
+    }
+
+    private int mateOf(int voter, Map<Integer, Integer> mateChanges)
+    {
+        Integer changedMate = mateChanges.get(voter);
+        return changedMate != null? changedMate : this.mate[voter];
+    }
+
+    private static List<List<Integer>> newLists(int count)
+    {
+        List<List<Integer>> lists = new ArrayList<List<Integer>>();
+        for (int i = 0; i < count; i++)
+        {
+            lists.add(new ArrayList<Integer>());
+        }
+        return lists;
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists)
+    {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; i++)
+        {
+            List<Integer> list = lists.get(i);
+            arrays[i] = new int[list.size()];
+            for (int j = 0; j < arrays[i].length; j++)
+            {
+                arrays[i][j] = list.get(j);
+            }
+        }
+        return arrays;
+    }
+}